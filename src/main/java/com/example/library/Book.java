@@ -52,6 +52,12 @@ public class Book {
     }
 
     // --- Setter ---
+    /**
+     * Sets the availability flag of this book.
+     * A {@link Library} updates this itself when it issues or returns the book; its faceted search
+     * only follows changes made that way, not direct calls to this method.
+     * @param available The new availability.
+     */
     public void setAvailable(boolean available) { // <-- Add setter for isAvailable
         isAvailable = available;
     }
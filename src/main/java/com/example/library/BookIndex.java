@@ -0,0 +1,190 @@
+package com.example.library;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bitmap index over the book catalog, used for faceted filtering.
+ * Each indexed book gets a dense internal ID (its position in insertion order), and
+ * compressed bitmaps of those IDs are kept for availability, author terms and title terms.
+ */
+class BookIndex {
+    private final List<Book> booksById;                      // Internal ID -> Book
+    private final Map<String, Integer> idsByIsbn;            // ISBN -> Internal ID
+    private final CompressedBitmap availableBooks;
+    private final Map<String, CompressedBitmap> authorTerms; // Normalized author term -> IDs
+    private final Map<String, CompressedBitmap> titleTerms;  // Normalized title term -> IDs
+
+    /**
+     * Constructs a new, empty index.
+     */
+    BookIndex() {
+        this.booksById = new ArrayList<>();
+        this.idsByIsbn = new HashMap<>();
+        this.availableBooks = new CompressedBitmap();
+        this.authorTerms = new HashMap<>();
+        this.titleTerms = new HashMap<>();
+    }
+
+    /**
+     * Assigns the next internal ID to a book and indexes its facets.
+     * Books whose ISBN is already indexed are ignored.
+     * @param book The book to index (must not be null).
+     */
+    void add(Book book) {
+        if (idsByIsbn.containsKey(book.getIsbn())) {
+            return;
+        }
+        int id = booksById.size();
+        booksById.add(book);
+        idsByIsbn.put(book.getIsbn(), id);
+        if (book.isAvailable()) {
+            availableBooks.add(id);
+        }
+        for (String term : normalize(book.getAuthor())) {
+            authorTerms.computeIfAbsent(term, key -> new CompressedBitmap()).add(id);
+        }
+        for (String term : normalize(book.getTitle())) {
+            titleTerms.computeIfAbsent(term, key -> new CompressedBitmap()).add(id);
+        }
+    }
+
+    /**
+     * Records a change in a book's availability.
+     * @param book The book whose availability changed (must not be null).
+     */
+    void updateAvailability(Book book) {
+        Integer id = idsByIsbn.get(book.getIsbn());
+        if (id == null) {
+            return;
+        }
+        if (book.isAvailable()) {
+            availableBooks.add(id);
+        } else {
+            availableBooks.remove(id);
+        }
+    }
+
+    /**
+     * Finds the books matching every given facet, in the order they were indexed.
+     * @param author Author terms that must all appear in the author, or null/blank for any author.
+     * @param title Title terms that must all appear in the title, or null/blank for any title.
+     * @param availableOnly Whether to keep only available books.
+     * @return A list of matching books.
+     */
+    List<Book> find(String author, String title, boolean availableOnly) {
+        List<Book> result = new ArrayList<>();
+        CompressedBitmap matches = match(author, title, availableOnly);
+        if (matches == null) {
+            result.addAll(booksById);
+        } else {
+            matches.forEach(id -> result.add(booksById.get(id)));
+        }
+        return result;
+    }
+
+    /**
+     * Counts the books matching every given facet without materializing them.
+     * @param author Author terms that must all appear in the author, or null/blank for any author.
+     * @param title Title terms that must all appear in the title, or null/blank for any title.
+     * @param availableOnly Whether to count only available books.
+     * @return The number of matching books.
+     */
+    int count(String author, String title, boolean availableOnly) {
+        List<CompressedBitmap> filters = collectFilters(author, title, availableOnly);
+        if (filters == null) {
+            return 0;
+        }
+        switch (filters.size()) {
+            case 0:
+                return booksById.size();
+            case 1:
+                return filters.get(0).cardinality();
+            case 2:
+                return filters.get(0).andCardinality(filters.get(1));
+            default:
+                return intersect(filters.subList(0, filters.size() - 1))
+                        .andCardinality(filters.get(filters.size() - 1));
+        }
+    }
+
+    /**
+     * Intersects the bitmaps for the given facets.
+     * @return The matching IDs, or null if no facet restricts the result.
+     */
+    private CompressedBitmap match(String author, String title, boolean availableOnly) {
+        List<CompressedBitmap> filters = collectFilters(author, title, availableOnly);
+        if (filters == null) {
+            return new CompressedBitmap();
+        }
+        return filters.isEmpty() ? null : intersect(filters);
+    }
+
+    /**
+     * Gathers the bitmap of every requested facet, smallest first so intersections shrink quickly.
+     * @return The bitmaps to intersect, or null if some facet cannot match any book.
+     */
+    private List<CompressedBitmap> collectFilters(String author, String title, boolean availableOnly) {
+        List<CompressedBitmap> filters = new ArrayList<>();
+        if (availableOnly) {
+            filters.add(availableBooks);
+        }
+        if (!addTermFilters(filters, authorTerms, author) || !addTermFilters(filters, titleTerms, title)) {
+            return null;
+        }
+        filters.sort((a, b) -> Integer.compare(a.cardinality(), b.cardinality()));
+        return filters;
+    }
+
+    /**
+     * Adds the bitmap of every term in a facet query. A null or blank query adds nothing.
+     * @return false if the query cannot match any book: some term is not indexed, or the query
+     *         is not blank but has no terms at all (e.g. only punctuation).
+     */
+    private static boolean addTermFilters(List<CompressedBitmap> filters,
+                                          Map<String, CompressedBitmap> terms, String query) {
+        if (query == null || query.trim().isEmpty()) {
+            return true;
+        }
+        List<String> queryTerms = normalize(query);
+        if (queryTerms.isEmpty()) {
+            return false;
+        }
+        for (String term : queryTerms) {
+            CompressedBitmap bitmap = terms.get(term);
+            if (bitmap == null) {
+                return false;
+            }
+            filters.add(bitmap);
+        }
+        return true;
+    }
+
+    private static CompressedBitmap intersect(List<CompressedBitmap> filters) {
+        CompressedBitmap result = filters.get(0);
+        for (int i = 1; i < filters.size() && !result.isEmpty(); i++) {
+            result = result.and(filters.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Splits text into lower-case terms on anything that is not a letter or digit.
+     * @param text The text to split (may be null).
+     * @return The distinct terms of the text; empty if the text is null or blank.
+     */
+    static List<String> normalize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        for (String term : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!term.isEmpty() && !terms.contains(term)) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+}
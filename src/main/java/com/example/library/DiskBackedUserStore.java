@@ -0,0 +1,483 @@
+package com.example.library;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
+
+/**
+ * Keeps users in an append-only file and only a bounded hot set of them on the heap.
+ * <p>
+ * Each user is stored as a record holding the user ID, name and the ISBNs of borrowed books.
+ * Only the location of each user's latest record is kept in memory, in a compact {@link UserRecordIndex}
+ * that does not hold the user IDs themselves. Users are loaded on demand and
+ * kept in a least-recently-used hot set. Changes are written through to the file as soon as they
+ * are reported, so evicting a user never needs any I/O.
+ * A user instance obtained from the store is only shared with later lookups while it stays hot.
+ * <p>
+ * Every change appends a new record and leaves the previous one stale. Once stale records take up
+ * half of the file (and at least {@link #COMPACTION_MIN_STALE_BYTES}), the file is rewritten with only
+ * the latest record of each user. This is checked before each write and when the store is closed,
+ * so the cost of a rewrite is spread over at least as many bytes of earlier writes.
+ * <p>
+ * The store holds an exclusive lock on the file while it is open, so a second store, in this
+ * or another process, cannot open the same file and overwrite its records.
+ * <p>
+ * Opening the store also works out which books are on loan according to the latest records,
+ * so the library can mark those books unavailable as soon as they are added to the catalog.
+ */
+class DiskBackedUserStore implements UserStore {
+    static final long COMPACTION_MIN_STALE_BYTES = 1 << 20;
+
+    private final Path path;
+    private RandomAccessFile file;
+    private FileLock fileLock;                        // Held on the file for as long as the store is open
+    private UserRecordIndex index;                    // UserID -> Location of latest record
+    private final LinkedHashMap<String, User> hotSet; // UserID -> User, in access order
+    private final Function<String, Book> bookLookup; // ISBN -> Book, or null if not in the catalog
+    private final Set<String> borrowedAtOpen;        // ISBNs on loan in the file when it was opened
+    private long endOffset;  // End of the last complete record
+    private long staleBytes; // Bytes taken by records that a later record replaced
+    private long hits;
+    private long misses;
+    private long totalFaultInNanos;
+
+    /**
+     * Opens a user store backed by the given file, creating the file if it does not exist.
+     * @param path The file holding the user records.
+     * @param hotSetCapacity The maximum number of users kept in memory (must be positive).
+     * @param bookLookup Resolves a borrowed book's ISBN to the catalog's Book when a user is loaded.
+     * @throws IOException If the file cannot be opened or read, holds a corrupt record, or another store has it open.
+     */
+    DiskBackedUserStore(Path path, int hotSetCapacity, Function<String, Book> bookLookup) throws IOException {
+        if (hotSetCapacity <= 0) {
+            throw new IllegalArgumentException("Hot set capacity must be positive.");
+        }
+        this.path = path;
+        this.file = new RandomAccessFile(path.toFile(), "rw");
+        this.fileLock = lock(file, path);
+        this.index = new UserRecordIndex();
+        this.bookLookup = bookLookup;
+        this.borrowedAtOpen = new HashSet<>();
+        this.hotSet = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, User> eldest) {
+                return size() > hotSetCapacity;
+            }
+        };
+        try {
+            indexExistingRecords();
+        } catch (IOException | RuntimeException e) {
+            try {
+                file.close();
+            } catch (IOException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void putIfAbsent(User user) {
+        if (hotSet.containsKey(user.getUserId()) || index.get(user.getUserId(), isRecordOf(user.getUserId())) >= 0) {
+            return;
+        }
+        writeRecord(user);
+        hotSet.put(user.getUserId(), user);
+    }
+
+    @Override
+    public Optional<User> find(String userId) {
+        User cached = hotSet.get(userId);
+        if (cached != null) {
+            hits++;
+            return Optional.of(cached);
+        }
+        long start = System.nanoTime();
+        StoredUser[] match = new StoredUser[1];
+        long entry = index.get(userId, candidate -> {
+            StoredUser stored = readRecord(candidate);
+            match[0] = stored;
+            return stored.userId.equals(userId);
+        });
+        if (entry < 0) {
+            return Optional.empty();
+        }
+        User user = resolve(match[0]);
+        totalFaultInNanos += System.nanoTime() - start;
+        misses++;
+        hotSet.put(userId, user);
+        return Optional.of(user);
+    }
+
+    /**
+     * Writes the user's new state to the file straight away and makes it the hot instance.
+     * @param user The modified user (must not be null).
+     * @throws UncheckedIOException If the record cannot be written; the stored state is then unchanged.
+     */
+    @Override
+    public void update(User user) {
+        writeRecord(user);
+        hotSet.put(user.getUserId(), user);
+    }
+
+    /**
+     * Gets every stored user. Users that are not hot are read from disk without being cached.
+     * @return A new list containing all users.
+     */
+    @Override
+    public List<User> findAll() {
+        List<User> users = new ArrayList<>(index.size());
+        users.addAll(hotSet.values());
+        index.forEach(entry -> {
+            StoredUser stored = readRecord(entry);
+            if (!hotSet.containsKey(stored.userId)) {
+                users.add(resolve(stored));
+            }
+        });
+        return users;
+    }
+
+    @Override
+    public boolean isBookBorrowed(String isbn) {
+        return borrowedAtOpen.contains(isbn);
+    }
+
+    @Override
+    public UserCacheStats getStats() {
+        return new UserCacheStats(hits, misses, totalFaultInNanos);
+    }
+
+    /**
+     * Forces every record written so far onto the storage device.
+     * @throws IOException If the file cannot be synced.
+     */
+    @Override
+    public void flush() throws IOException {
+        file.getChannel().force(false);
+    }
+
+    /**
+     * Compacts the file if enough of it is stale, then syncs and closes it.
+     * @throws IOException If the file cannot be compacted, synced or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (needsCompaction()) {
+                compact();
+            }
+            flush();
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Takes an exclusive lock on an open file.
+     * @throws IOException If another store, in this or another process, holds the lock.
+     */
+    private static FileLock lock(RandomAccessFile file, Path path) throws IOException {
+        FileLock lock;
+        try {
+            lock = file.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null; // Held by another store in this JVM
+        }
+        if (lock == null) {
+            file.close();
+            throw new IOException("User file " + path + " is already open in another library.");
+        }
+        return lock;
+    }
+
+    /**
+     * Scans the file once, remembering the offset of the latest record for every user
+     * and which books those latest records have on loan.
+     * @throws IOException If the file cannot be read or a complete record cannot be decoded.
+     */
+    private void indexExistingRecords() throws IOException {
+        Map<String, String> lastBorrowers = new HashMap<>();  // ISBN -> UserID of the last record listing it
+        Map<String, Long> lastBorrowEntries = new HashMap<>(); // ISBN -> Index entry of that record
+        long offset = 0;
+        long length = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (offset + Integer.BYTES <= length) {
+                int recordLength = in.readInt();
+                if (recordLength < 0 || offset + Integer.BYTES + recordLength > length) {
+                    break; // Incomplete record left by an interrupted write
+                }
+                byte[] payload = new byte[recordLength];
+                in.readFully(payload);
+                StoredUser stored;
+                try {
+                    stored = StoredUser.decode(payload, 0, payload.length);
+                } catch (IOException e) {
+                    throw new IOException("Corrupt user record at offset " + offset + " in " + path, e);
+                }
+                long entry = UserRecordIndex.entry(offset, Integer.BYTES + recordLength);
+                long previous = index.put(stored.userId, entry, isRecordOf(stored.userId));
+                if (previous >= 0) {
+                    staleBytes += UserRecordIndex.lengthOf(previous);
+                }
+                for (String isbn : stored.borrowedIsbns) {
+                    lastBorrowers.put(isbn, stored.userId);
+                    lastBorrowEntries.put(isbn, entry);
+                }
+                offset += Integer.BYTES + recordLength;
+            }
+        }
+        // A book is still on loan only if the record that last listed it is its borrower's latest one
+        for (Map.Entry<String, String> entry : lastBorrowers.entrySet()) {
+            if (index.isCurrent(entry.getValue(), lastBorrowEntries.get(entry.getKey()))) {
+                borrowedAtOpen.add(entry.getKey());
+            }
+        }
+        file.setLength(offset);
+        endOffset = offset;
+    }
+
+    /**
+     * Appends a record for the user and points the index at it, compacting the file first if needed.
+     * If the write or the index update fails, the new record is cut off again, so the file and the index
+     * both still describe the previous state.
+     */
+    private void writeRecord(User user) {
+        try {
+            if (needsCompaction()) {
+                compact();
+            }
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeInt(0); // Placeholder for the record length
+            out.writeUTF(user.getUserId());
+            out.writeUTF(user.getName());
+            List<Book> borrowedBooks = user.getBorrowedBooks();
+            out.writeShort(borrowedBooks.size());
+            for (Book book : borrowedBooks) {
+                out.writeUTF(book.getIsbn());
+            }
+            byte[] record = buffer.toByteArray();
+            int recordLength = record.length - Integer.BYTES;
+            record[0] = (byte) (recordLength >>> 24);
+            record[1] = (byte) (recordLength >>> 16);
+            record[2] = (byte) (recordLength >>> 8);
+            record[3] = (byte) recordLength;
+
+            long offset = endOffset;
+            long entry = UserRecordIndex.entry(offset, record.length);
+            long previous;
+            try {
+                file.seek(offset);
+                file.write(record);
+                previous = index.put(user.getUserId(), entry, isRecordOf(user.getUserId()));
+            } catch (IOException | UncheckedIOException e) {
+                try {
+                    file.setLength(offset);
+                } catch (IOException truncateFailure) {
+                    e.addSuppressed(truncateFailure);
+                }
+                throw e;
+            }
+            endOffset += record.length;
+            if (previous >= 0) {
+                staleBytes += UserRecordIndex.lengthOf(previous);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write user " + user.getUserId(), e);
+        }
+    }
+
+    private boolean needsCompaction() {
+        return staleBytes >= COMPACTION_MIN_STALE_BYTES && staleBytes * 2 >= endOffset;
+    }
+
+    /**
+     * Rewrites the file with only the latest record of each user, then swaps it in.
+     * The old file is read sequentially, keeping each record only if the index still points to it.
+     * The new file is written next to the old one, so a failure leaves the old file and index in use.
+     * The new file is locked before it replaces the old one, so the lock is never released in between,
+     * and synced before the rename, so a crash cannot leave the rename on disk without the records.
+     */
+    private void compact() throws IOException {
+        Path compactPath = path.resolveSibling(path.getFileName() + ".compact");
+        RandomAccessFile compactFile = new RandomAccessFile(compactPath.toFile(), "rw");
+        UserRecordIndex compactIndex = new UserRecordIndex();
+        long compactLength = 0;
+        FileLock compactLock;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            compactLock = lock(compactFile, compactPath);
+            compactFile.setLength(0);
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(compactFile.getChannel())));
+            long offset = 0;
+            while (offset < endOffset) {
+                int recordLength = in.readInt();
+                byte[] payload = new byte[recordLength];
+                in.readFully(payload);
+                String userId = StoredUser.decode(payload, 0, payload.length).userId;
+                int length = Integer.BYTES + recordLength;
+                if (index.isCurrent(userId, UserRecordIndex.entry(offset, length))) {
+                    out.writeInt(recordLength);
+                    out.write(payload);
+                    compactIndex.add(userId, UserRecordIndex.entry(compactLength, length));
+                    compactLength += length;
+                }
+                offset += length;
+            }
+            out.flush();
+            compactFile.getChannel().force(true);
+            Files.move(compactPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            try {
+                compactFile.close();
+                Files.deleteIfExists(compactPath);
+            } catch (IOException cleanupFailure) {
+                e.addSuppressed(cleanupFailure);
+            }
+            throw e;
+        }
+
+        RandomAccessFile replacedFile = file;
+        file = compactFile;
+        fileLock = compactLock;
+        index = compactIndex;
+        endOffset = compactLength;
+        staleBytes = 0;
+        replacedFile.close(); // Also releases the lock on the replaced file
+        syncDirectory(path.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Syncs a directory so that a rename inside it survives a crash.
+     * Platforms that cannot open a directory for syncing (such as Windows) are skipped,
+     * since the rename is still atomic there.
+     */
+    private static void syncDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (FileChannel directoryChannel = channel) {
+            directoryChannel.force(true);
+        }
+    }
+
+    /**
+     * Reads the record an index entry points to, without resolving its borrowed books.
+     */
+    private StoredUser readRecord(long entry) {
+        return decode(readRecordBytes(entry));
+    }
+
+    /**
+     * Reads the raw bytes of the record an index entry points to, including its length header.
+     */
+    private byte[] readRecordBytes(long entry) {
+        long offset = UserRecordIndex.offsetOf(entry);
+        try {
+            byte[] record = new byte[UserRecordIndex.lengthOf(entry)];
+            file.seek(offset);
+            file.readFully(record);
+            return record;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read user record at offset " + offset, e);
+        }
+    }
+
+    private static StoredUser decode(byte[] record) {
+        try {
+            return StoredUser.decode(record, Integer.BYTES, record.length - Integer.BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt user record", e);
+        }
+    }
+
+    /**
+     * Builds a predicate telling whether the record behind an index entry belongs to the given user.
+     */
+    private LongPredicate isRecordOf(String userId) {
+        return entry -> {
+            try {
+                file.seek(UserRecordIndex.offsetOf(entry) + Integer.BYTES);
+                return userId.equals(file.readUTF());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read user record for " + userId, e);
+            }
+        };
+    }
+
+    /**
+     * Turns a stored record into a User, resolving borrowed ISBNs against the catalog.
+     * A user is never built from part of a record: if a borrowed book cannot be restored, the load fails
+     * and the stored record is left untouched.
+     * @throws IllegalStateException If a borrowed ISBN is not in the catalog or cannot be borrowed again.
+     */
+    private User resolve(StoredUser stored) {
+        User user = new User(stored.userId, stored.name);
+        for (String isbn : stored.borrowedIsbns) {
+            Book book = bookLookup.apply(isbn);
+            if (book == null) {
+                throw new IllegalStateException("User " + user.getUserId() + " has borrowed book " + isbn
+                        + ", which is not in the catalog. Add it before looking the user up.");
+            }
+            if (!user.borrowBook(book)) {
+                throw new IllegalStateException("Could not restore book " + isbn + " for user " + user.getUserId());
+            }
+        }
+        return user;
+    }
+
+    /**
+     * The fields of one user record, before borrowed ISBNs are resolved against the catalog.
+     */
+    private static final class StoredUser {
+        private final String userId;
+        private final String name;
+        private final List<String> borrowedIsbns;
+
+        private StoredUser(String userId, String name, List<String> borrowedIsbns) {
+            this.userId = userId;
+            this.name = name;
+            this.borrowedIsbns = borrowedIsbns;
+        }
+
+        private static StoredUser decode(byte[] buffer, int offset, int length) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer, offset, length));
+            String userId = in.readUTF();
+            String name = in.readUTF();
+            int borrowedCount = in.readUnsignedShort();
+            List<String> borrowedIsbns = new ArrayList<>(borrowedCount);
+            for (int i = 0; i < borrowedCount; i++) {
+                borrowedIsbns.add(in.readUTF());
+            }
+            return new StoredUser(userId, name, borrowedIsbns);
+        }
+    }
+}
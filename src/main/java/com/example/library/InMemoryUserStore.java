@@ -0,0 +1,63 @@
+package com.example.library;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps every registered user on the heap. Every successful lookup counts as a cache hit.
+ */
+class InMemoryUserStore implements UserStore {
+    private final Map<String, User> users; // UserID -> User
+    private long hits;
+
+    InMemoryUserStore() {
+        this.users = new HashMap<>();
+    }
+
+    @Override
+    public void putIfAbsent(User user) {
+        users.putIfAbsent(user.getUserId(), user);
+    }
+
+    @Override
+    public Optional<User> find(String userId) {
+        User user = users.get(userId);
+        if (user != null) {
+            hits++;
+        }
+        return Optional.ofNullable(user);
+    }
+
+    @Override
+    public void update(User user) {
+        // The stored instance is the one that was modified; nothing to do.
+    }
+
+    @Override
+    public List<User> findAll() {
+        return new ArrayList<>(users.values());
+    }
+
+    @Override
+    public boolean isBookBorrowed(String isbn) {
+        return false; // Nothing was stored before the library was created
+    }
+
+    @Override
+    public UserCacheStats getStats() {
+        return new UserCacheStats(hits, 0, 0);
+    }
+
+    @Override
+    public void flush() {
+        // Nothing is stored outside the heap.
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release.
+    }
+}
@@ -1,5 +1,9 @@
 package com.example.library;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -10,21 +14,42 @@ import java.util.stream.Collectors;
 /**
  * Manages a collection of books and users, and handles book issuing and returning.
  */
-public class Library {
+public class Library implements Closeable {
     private final Map<String, Book> bookCatalog; // ISBN -> Book
-    private final Map<String, User> registeredUsers; // UserID -> User
+    private final UserStore registeredUsers; // UserID -> User
+    private final BookIndex bookIndex; // Bitmap index for faceted filtering
 
     /**
-     * Constructs a new Library with empty catalogs.
+     * Constructs a new Library with empty catalogs, keeping all users in memory.
      */
     public Library() {
         this.bookCatalog = new HashMap<>();
-        this.registeredUsers = new HashMap<>();
+        this.registeredUsers = new InMemoryUserStore();
+        this.bookIndex = new BookIndex();
+    }
+
+    /**
+     * Constructs a new Library with an empty book catalog whose users are stored on disk.
+     * Only the most recently used users are kept in memory; others are loaded on demand.
+     * Users already in the file are available again, and their borrowed books are resolved
+     * against the catalog when they are loaded. Every method that looks a user up ({@link #findUserById(String)},
+     * {@link #issueBook(String, String)}, {@link #returnBook(String, String)}, {@link #canUserBorrow(String)}
+     * and {@link #getAllUsers()}) throws an IllegalStateException if it has to load a user who has borrowed
+     * a book that is not in the catalog yet; the stored user is left unchanged.
+     * @param userFile The file holding the user records; created if it does not exist.
+     * @param hotSetCapacity The maximum number of users kept in memory (must be positive).
+     * @throws IOException If the user file cannot be opened or read, or another library already has it open.
+     */
+    public Library(Path userFile, int hotSetCapacity) throws IOException {
+        this.bookCatalog = new HashMap<>();
+        this.registeredUsers = new DiskBackedUserStore(userFile, hotSetCapacity, bookCatalog::get);
+        this.bookIndex = new BookIndex();
     }
 
     /**
      * Adds a new book to the library catalog.
      * If a book with the same ISBN already exists, it will not be added.
+     * If a user stored on disk has the book on loan, it is added as unavailable.
      * @param book The book to add (must not be null).
      */
     public void addBook(Book book) {
@@ -32,7 +57,12 @@ public class Library {
             System.err.println("Attempted to add a null book."); // Or throw new IllegalArgumentException
             return;
         }
-        bookCatalog.putIfAbsent(book.getIsbn(), book);
+        if (bookCatalog.putIfAbsent(book.getIsbn(), book) == null) {
+            if (registeredUsers.isBookBorrowed(book.getIsbn())) {
+                book.setAvailable(false); // Still on loan to a user stored on disk
+            }
+            bookIndex.add(book);
+        }
     }
 
     /**
@@ -45,7 +75,7 @@ public class Library {
             System.err.println("Attempted to register a null user."); // Or throw new IllegalArgumentException
             return;
         }
-        registeredUsers.putIfAbsent(user.getUserId(), user);
+        registeredUsers.putIfAbsent(user);
     }
 
     /**
@@ -92,17 +122,47 @@ public class Library {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Finds books matching all of the given facets using the catalog's bitmap index.
+     * Unlike {@link #findBooksByAuthor(String)} and {@link #findBooksByTitle(String)}, matching is by
+     * whole words: every word of the author and title queries must appear (case-insensitively) in the book.
+     * Availability is the one tracked by the index, which follows {@link #addBook(Book)},
+     * {@link #issueBook(String, String)} and {@link #returnBook(String, String)}; calling
+     * {@link Book#setAvailable(boolean)} directly on a catalog book does not change these results.
+     * A facet that is not blank but has no words (e.g. only punctuation) matches no books.
+     * @param author The author words to match, or null/blank to match any author.
+     * @param title The title words to match, or null/blank to match any title.
+     * @param availableOnly true to return only books that the library has not issued.
+     * @return A list of matching books, in the order they were added to the catalog.
+     */
+    public List<Book> findBooks(String author, String title, boolean availableOnly) {
+        return bookIndex.find(author, title, availableOnly);
+    }
+
+    /**
+     * Counts books matching all of the given facets without building the list of results.
+     * Matching, including how availability is tracked, follows the same rules as
+     * {@link #findBooks(String, String, boolean)}.
+     * @param author The author words to match, or null/blank to match any author.
+     * @param title The title words to match, or null/blank to match any title.
+     * @param availableOnly true to count only books that the library has not issued.
+     * @return The number of matching books.
+     */
+    public int countBooks(String author, String title, boolean availableOnly) {
+        return bookIndex.count(author, title, availableOnly);
+    }
 
     /**
      * Finds a registered user by their ID.
      * @param userId The ID of the user to find.
      * @return An Optional containing the user if found, otherwise an empty Optional.
+     * @throws IllegalStateException If the user is stored on disk with a borrowed book missing from the catalog.
      */
     public Optional<User> findUserById(String userId) {
         if (userId == null || userId.trim().isEmpty()) {
             return Optional.empty();
         }
-        return Optional.ofNullable(registeredUsers.get(userId));
+        return registeredUsers.find(userId);
     }
 
     /**
@@ -111,6 +171,8 @@ public class Library {
      * @param isbn The ISBN of the book to be issued.
      * @return true if the book was successfully issued, false otherwise
      * (e.g., book not found, book unavailable, user not found, user at borrow limit).
+     * @throws UncheckedIOException If the user's new state cannot be stored; nothing is changed in that case.
+     * @throws IllegalStateException If the user is stored on disk with a borrowed book missing from the catalog.
      */
     public boolean issueBook(String userId, String isbn) {
         Optional<User> userOpt = findUserById(userId);
@@ -123,7 +185,14 @@ public class Library {
             if (book.isAvailable() && user.canBorrowMore()) {
                 // User.borrowBook checks if the book is already borrowed by this user and limit
                 if (user.borrowBook(book)) {
+                    try {
+                        registeredUsers.update(user);
+                    } catch (UncheckedIOException e) {
+                        user.returnBook(book); // Keep the user in step with the stored record
+                        throw e;
+                    }
                     book.setAvailable(false);
+                    bookIndex.updateAvailability(book);
                     return true;
                 }
             }
@@ -137,6 +206,8 @@ public class Library {
      * @param isbn The ISBN of the book to be returned.
      * @return true if the book was successfully returned, false otherwise
      * (e.g., user not found, book not found, user did not borrow this book).
+     * @throws UncheckedIOException If the user's new state cannot be stored; nothing is changed in that case.
+     * @throws IllegalStateException If the user is stored on disk with a borrowed book missing from the catalog.
      */
     public boolean returnBook(String userId, String isbn) {
         Optional<User> userOpt = findUserById(userId);
@@ -149,7 +220,14 @@ public class Library {
             // User.returnBook handles removing from its list
             // It will return false if the user didn't have this book
             if (user.returnBook(book)) {
+                try {
+                    registeredUsers.update(user);
+                } catch (UncheckedIOException e) {
+                    user.borrowBook(book); // Keep the user in step with the stored record
+                    throw e;
+                }
                 book.setAvailable(true);
+                bookIndex.updateAvailability(book);
                 return true;
             }
         }
@@ -172,6 +250,7 @@ public class Library {
      * Checks if a user has reached their borrowing limit or can borrow more.
      * @param userId The ID of the user.
      * @return true if the user can borrow more books, false if they reached the limit or user not found.
+     * @throws IllegalStateException If the user is stored on disk with a borrowed book missing from the catalog.
      */
     public boolean canUserBorrow(String userId) {
         return findUserById(userId)
@@ -190,8 +269,37 @@ public class Library {
     /**
      * Gets a list of all registered users.
      * @return A new list containing all users.
+     * @throws IllegalStateException If a user is stored on disk with a borrowed book missing from the catalog.
      */
     public List<User> getAllUsers() {
-        return new ArrayList<>(registeredUsers.values());
+        return registeredUsers.findAll();
+    }
+
+    /**
+     * Gets metrics for user lookups: how often users were found in memory
+     * and how long it took to load the others from disk.
+     * @return A snapshot of the current user lookup metrics.
+     */
+    public UserCacheStats getUserCacheStats() {
+        return registeredUsers.getStats();
+    }
+
+    /**
+     * Forces stored users onto the storage device, if a user file is used.
+     * Changes are already written to the file when {@link #issueBook(String, String)} or
+     * {@link #returnBook(String, String)} returns; this also protects them against an operating system crash.
+     * @throws IOException If the user file cannot be synced.
+     */
+    public void flush() throws IOException {
+        registeredUsers.flush();
+    }
+
+    /**
+     * Syncs and releases the user file, if one is used.
+     * @throws IOException If the user store cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        registeredUsers.close();
     }
 }
\ No newline at end of file
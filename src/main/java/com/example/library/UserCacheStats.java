@@ -0,0 +1,63 @@
+package com.example.library;
+
+/**
+ * An immutable snapshot of user lookup metrics.
+ * A hit is a lookup served from memory; a miss is a lookup that had to fault the user in from disk.
+ */
+public final class UserCacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long totalFaultInNanos;
+
+    /**
+     * Constructs a new snapshot.
+     * @param hitCount The number of lookups served from memory.
+     * @param missCount The number of lookups that loaded the user from disk.
+     * @param totalFaultInNanos The total time spent loading users from disk, in nanoseconds.
+     */
+    public UserCacheStats(long hitCount, long missCount, long totalFaultInNanos) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.totalFaultInNanos = totalFaultInNanos;
+    }
+
+    // --- Getters ---
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getTotalFaultInNanos() {
+        return totalFaultInNanos;
+    }
+
+    /**
+     * Gets the fraction of lookups served from memory.
+     * @return The hit rate between 0.0 and 1.0, or 0.0 if there were no lookups.
+     */
+    public double getHitRate() {
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0.0 : (double) hitCount / lookups;
+    }
+
+    /**
+     * Gets the average time taken to load a user from disk.
+     * @return The average fault-in latency in nanoseconds, or 0 if no user was loaded.
+     */
+    public long getAverageFaultInNanos() {
+        return missCount == 0 ? 0 : totalFaultInNanos / missCount;
+    }
+
+    @Override
+    public String toString() {
+        return "UserCacheStats{" +
+                "hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", hitRate=" + getHitRate() +
+                ", averageFaultInNanos=" + getAverageFaultInNanos() +
+                '}';
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.library;
+
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Compact in-memory index from user ID to the location of that user's latest record.
+ * <p>
+ * User IDs themselves are not kept on the heap. Each slot holds a 64-bit hash of the ID and the
+ * record's offset and length packed into one long, so an entry costs about 32 bytes at the maximum
+ * load factor of one half. Because different IDs may share a hash, callers pass a predicate that checks
+ * whether a candidate record really belongs to the requested user.
+ */
+class UserRecordIndex {
+    private static final int INITIAL_CAPACITY = 1024; // Must be a power of two
+    private static final int LENGTH_BITS = 24;
+    static final int MAX_RECORD_LENGTH = (1 << LENGTH_BITS) - 1;
+    static final long MAX_OFFSET = (1L << (Long.SIZE - LENGTH_BITS - 1)) - 1;
+
+    private long[] hashes;  // 0 marks an empty slot
+    private long[] entries; // Record offset and length, see entry(long, int)
+    private int size;
+
+    /**
+     * Constructs a new, empty index.
+     */
+    UserRecordIndex() {
+        this.hashes = new long[INITIAL_CAPACITY];
+        this.entries = new long[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Packs a record location into an index entry.
+     * @param offset The offset of the record in the file (at most {@link #MAX_OFFSET}).
+     * @param length The length of the record in bytes (at most {@link #MAX_RECORD_LENGTH}).
+     * @return The packed entry, never negative.
+     */
+    static long entry(long offset, int length) {
+        if (offset < 0 || offset > MAX_OFFSET) {
+            throw new IllegalArgumentException("Record offset out of range: " + offset);
+        }
+        if (length < 0 || length > MAX_RECORD_LENGTH) {
+            throw new IllegalArgumentException("Record length out of range: " + length);
+        }
+        return (offset << LENGTH_BITS) | length;
+    }
+
+    static long offsetOf(long entry) {
+        return entry >>> LENGTH_BITS;
+    }
+
+    static int lengthOf(long entry) {
+        return (int) (entry & MAX_RECORD_LENGTH);
+    }
+
+    /**
+     * Finds the entry for a user.
+     * @param userId The ID of the user.
+     * @param isRecordOf Checks whether the record behind a candidate entry belongs to the user.
+     * @return The user's entry, or -1 if the user is not indexed.
+     */
+    long get(String userId, LongPredicate isRecordOf) {
+        long hash = hash(userId);
+        for (int slot = firstSlot(hash); hashes[slot] != 0; slot = nextSlot(slot)) {
+            if (hashes[slot] == hash && isRecordOf.test(entries[slot])) {
+                return entries[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether the given entry is the current one for a user, without reading any record.
+     * @param userId The ID of the user.
+     * @param entry The entry to look for.
+     * @return true if the user's latest record is the one the entry points to.
+     */
+    boolean isCurrent(String userId, long entry) {
+        long hash = hash(userId);
+        for (int slot = firstSlot(hash); hashes[slot] != 0; slot = nextSlot(slot)) {
+            if (hashes[slot] == hash && entries[slot] == entry) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Points a user at a new record, adding the user if needed.
+     * @param userId The ID of the user.
+     * @param entry The entry for the user's new record.
+     * @param isRecordOf Checks whether the record behind an existing entry belongs to the user.
+     *                   If it throws, the exception propagates and the index is left unchanged.
+     * @return The entry that was replaced, or -1 if the user was not indexed.
+     */
+    long put(String userId, long entry, LongPredicate isRecordOf) {
+        long hash = hash(userId);
+        int slot = firstSlot(hash);
+        for (; hashes[slot] != 0; slot = nextSlot(slot)) {
+            if (hashes[slot] == hash && isRecordOf.test(entries[slot])) {
+                long previous = entries[slot];
+                entries[slot] = entry;
+                return previous;
+            }
+        }
+        insert(slot, hash, entry);
+        return -1;
+    }
+
+    /**
+     * Adds a user known not to be indexed yet, without checking any record.
+     * @param userId The ID of the user.
+     * @param entry The entry for the user's record.
+     */
+    void add(String userId, long entry) {
+        long hash = hash(userId);
+        int slot = firstSlot(hash);
+        while (hashes[slot] != 0) {
+            slot = nextSlot(slot);
+        }
+        insert(slot, hash, entry);
+    }
+
+    /**
+     * Visits the entry of every indexed user, in no particular order.
+     * @param action The action to run for each entry.
+     */
+    void forEach(LongConsumer action) {
+        for (int slot = 0; slot < hashes.length; slot++) {
+            if (hashes[slot] != 0) {
+                action.accept(entries[slot]);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void insert(int slot, long hash, long entry) {
+        hashes[slot] = hash;
+        entries[slot] = entry;
+        size++;
+        if (size * 2 > hashes.length) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        long[] oldHashes = hashes;
+        long[] oldEntries = entries;
+        hashes = new long[oldHashes.length * 2];
+        entries = new long[oldEntries.length * 2];
+        for (int i = 0; i < oldHashes.length; i++) {
+            if (oldHashes[i] != 0) {
+                int slot = firstSlot(oldHashes[i]);
+                while (hashes[slot] != 0) {
+                    slot = nextSlot(slot);
+                }
+                hashes[slot] = oldHashes[i];
+                entries[slot] = oldEntries[i];
+            }
+        }
+    }
+
+    private int firstSlot(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & (hashes.length - 1);
+    }
+
+    private int nextSlot(int slot) {
+        return (slot + 1) & (hashes.length - 1);
+    }
+
+    /**
+     * Computes a 64-bit FNV-1a hash of the ID, never 0 since 0 marks an empty slot.
+     */
+    private static long hash(String userId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < userId.length(); i++) {
+            hash ^= userId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 29; // Spread high bits into the ones used to pick a slot
+        return hash == 0 ? 1 : hash;
+    }
+}
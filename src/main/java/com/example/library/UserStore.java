@@ -0,0 +1,59 @@
+package com.example.library;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Storage for registered users, keyed by user ID.
+ * Implementations decide how many {@link User} records are kept on the heap.
+ */
+interface UserStore extends Closeable {
+
+    /**
+     * Stores a user unless one with the same ID is already stored.
+     * @param user The user to store (must not be null).
+     */
+    void putIfAbsent(User user);
+
+    /**
+     * Looks up a user by ID, loading it into memory if needed.
+     * @param userId The ID of the user.
+     * @return An Optional containing the user if stored, otherwise an empty Optional.
+     */
+    Optional<User> find(String userId);
+
+    /**
+     * Stores the new state of a user returned by {@link #find(String)} that has been modified.
+     * @param user The modified user (must not be null).
+     * @throws java.io.UncheckedIOException If the change cannot be stored.
+     */
+    void update(User user);
+
+    /**
+     * Gets every stored user.
+     * @return A new list containing all users.
+     */
+    List<User> findAll();
+
+    /**
+     * Checks whether a book was on loan according to the users stored before this store was opened.
+     * The library uses this to mark such books unavailable when they are added to the catalog.
+     * @param isbn The ISBN of the book.
+     * @return true if a stored user had the book on loan, false otherwise.
+     */
+    boolean isBookBorrowed(String isbn);
+
+    /**
+     * Gets a snapshot of the store's lookup metrics.
+     * @return The current metrics.
+     */
+    UserCacheStats getStats();
+
+    /**
+     * Forces every stored change onto durable storage.
+     * @throws IOException If the changes cannot be written.
+     */
+    void flush() throws IOException;
+}
@@ -0,0 +1,76 @@
+package com.example.library;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the CompressedBitmap class.
+ */
+class CompressedBitmapTest {
+
+    @Test
+    @DisplayName("Test adding, removing and checking values across chunks")
+    void addRemoveContains_acrossChunks() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        bitmap.add(3);
+        bitmap.add(70000); // Second chunk
+        bitmap.add(3);     // Duplicate should be ignored
+
+        assertEquals(2, bitmap.cardinality());
+        assertTrue(bitmap.contains(3));
+        assertTrue(bitmap.contains(70000));
+        assertFalse(bitmap.contains(4));
+
+        bitmap.remove(70000);
+        bitmap.remove(12345); // Missing value should be ignored
+        assertEquals(1, bitmap.cardinality());
+        assertFalse(bitmap.contains(70000));
+    }
+
+    @Test
+    @DisplayName("Test dense chunks keep their contents when growing and shrinking")
+    void denseChunk_shouldConvertBothWays() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int i = 0; i < 10000; i += 2) {
+            bitmap.add(i);
+        }
+        assertEquals(5000, bitmap.cardinality());
+        assertTrue(bitmap.contains(9998));
+        assertFalse(bitmap.contains(9999));
+
+        for (int i = 0; i < 4000; i += 2) {
+            bitmap.remove(i);
+        }
+        assertEquals(3000, bitmap.cardinality());
+        assertFalse(bitmap.contains(0));
+        assertTrue(bitmap.contains(4000));
+    }
+
+    @Test
+    @DisplayName("Test intersection and intersection count agree between sparse and dense chunks")
+    void and_sparseAndDense_shouldMatchCardinality() {
+        CompressedBitmap evens = new CompressedBitmap();
+        CompressedBitmap multiplesOfThree = new CompressedBitmap();
+        for (int i = 0; i < 20000; i += 2) {
+            evens.add(i);
+        }
+        for (int i = 0; i < 200000; i += 3) {
+            multiplesOfThree.add(i);
+        }
+
+        CompressedBitmap intersection = evens.and(multiplesOfThree);
+        List<Integer> values = new ArrayList<>();
+        intersection.forEach(values::add);
+
+        assertEquals(3334, intersection.cardinality());
+        assertEquals(3334, evens.andCardinality(multiplesOfThree));
+        assertEquals(0, values.get(0));
+        assertEquals(19998, values.get(values.size() - 1));
+        assertTrue(values.stream().allMatch(v -> v % 6 == 0));
+    }
+}
@@ -3,11 +3,14 @@ package com.example.library;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
-
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
 
@@ -139,6 +142,54 @@ class LibraryTest {
         assertTrue(foundBooks.isEmpty(), "Should return an empty list for a non-matching author.");
     }
 
+    @Test
+    @DisplayName("Test faceted search combines availability, author and title words")
+    void findBooks_combinedFacets_shouldReturnIntersection() {
+        library.addBook(book4); // Head First Design Patterns, Eric Freeman
+        library.addBook(bookForLimit); // Design Patterns, Erich Gamma
+
+        List<Book> byEricDesign = library.findBooks("eric", "design", false);
+        assertEquals(List.of(book3, book4), byEricDesign, "Both Eric books have 'design' in the title.");
+
+        library.issueBook(user1.getUserId(), book3.getIsbn());
+        List<Book> availableByEricDesign = library.findBooks("Eric", "Design", true);
+        assertEquals(List.of(book4), availableByEricDesign, "Issued book should be filtered out.");
+        assertEquals(1, library.countBooks("Eric", "Design", true));
+
+        library.returnBook(user1.getUserId(), book3.getIsbn());
+        assertEquals(2, library.countBooks("Eric", "Design", true), "Returned book should be available again.");
+    }
+
+    @Test
+    @DisplayName("Test faceted search matches whole words and treats blank facets as unrestricted")
+    void findBooks_wordMatchingAndBlankFacets() {
+        assertTrue(library.findBooks("Eri", null, false).isEmpty(), "Partial words should not match.");
+        assertTrue(library.findBooks("Bloch", "Clean", false).isEmpty(), "Facets should be intersected.");
+        assertEquals(List.of(book2), library.findBooks("robert martin", "", false));
+        assertEquals(3, library.countBooks(null, "  ", true), "No facets should count every available book.");
+
+        assertTrue(library.findBooks("!!!", null, false).isEmpty(), "A facet with no words should match nothing.");
+        assertEquals(0, library.countBooks(null, " - ", false));
+
+        library.issueBook(user1.getUserId(), book1.getIsbn());
+        assertEquals(List.of(book2, book3), library.findBooks(null, null, true));
+        assertEquals(0, library.countBooks("Bloch", null, true));
+    }
+
+    @Test
+    @DisplayName("Test faceted search availability follows issue and return, not direct Book.setAvailable calls")
+    void findBooks_directAvailabilityChange_shouldNotAffectIndex() {
+        book1.setAvailable(false); // Bypasses the library
+
+        assertFalse(library.isBookAvailable(book1.getIsbn()), "The book itself reports the direct change.");
+        assertEquals(List.of(book1), library.findBooks("Bloch", null, true), "The index only follows issue and return.");
+        assertEquals(3, library.countBooks(null, null, true));
+
+        book1.setAvailable(true);
+        library.issueBook(user1.getUserId(), book1.getIsbn());
+        assertEquals(0, library.countBooks("Bloch", null, true), "Issuing through the library updates the index.");
+    }
+
     @Test
     @DisplayName("Test successful book issue to a valid user within limits")
     void issueBook_successfulScenario_shouldUpdateAvailabilityAndUserList() {
@@ -277,4 +328,209 @@ class LibraryTest {
         assertFalse(library.isBookAvailable(book1.getIsbn()), "Book1 should be unavailable after issuing.");
         assertFalse(library.isBookAvailable("non-existent-isbn123"), "Non-existent book should not be available.");
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Test disk-backed users are faulted back in with their borrowed books after eviction")
+    void diskBackedUsers_evictedUser_shouldReloadWithBorrowedBooks(@TempDir Path tempDir) throws IOException {
+        try (Library diskLibrary = new Library(tempDir.resolve("users.dat"), 1)) {
+            diskLibrary.addBook(book1);
+            diskLibrary.registerUser(user1);
+            diskLibrary.registerUser(user2); // Evicts user1 from the hot set
+
+            assertTrue(diskLibrary.issueBook(user1.getUserId(), book1.getIsbn()), "Evicted user should be loaded to borrow.");
+            assertTrue(diskLibrary.canUserBorrow(user2.getUserId()), "Evicts user1 again while it is modified.");
+
+            Optional<User> reloaded = diskLibrary.findUserById(user1.getUserId());
+            assertTrue(reloaded.isPresent());
+            assertEquals(List.of(book1), reloaded.get().getBorrowedBooks(), "Borrowed books should survive eviction.");
+            assertFalse(diskLibrary.findUserById("nonExistentUser123").isPresent());
+
+            UserCacheStats stats = diskLibrary.getUserCacheStats();
+            assertEquals(3, stats.getMissCount(), "user1, user2 and user1 again had to be loaded from disk.");
+            assertEquals(0, stats.getHitCount());
+            assertEquals(2, diskLibrary.getAllUsers().size());
+        }
+    }
+
+    @Test
+    @DisplayName("Test disk-backed users persist across library instances and count hot lookups as hits")
+    void diskBackedUsers_reopenedFile_shouldKeepUsers(@TempDir Path tempDir) throws IOException {
+        Path userFile = tempDir.resolve("users.dat");
+        try (Library diskLibrary = new Library(userFile, 10)) {
+            diskLibrary.addBook(book1);
+            diskLibrary.registerUser(user1);
+            assertTrue(diskLibrary.issueBook(user1.getUserId(), book1.getIsbn()));
+            assertEquals(1.0, diskLibrary.getUserCacheStats().getHitRate(), "Hot user should be served from memory.");
+        }
+
+        try (Library reopened = new Library(userFile, 10)) {
+            Book restartedCopy = new Book(book1.getIsbn(), book1.getTitle(), book1.getAuthor()); // Fresh and available
+            reopened.addBook(restartedCopy);
+            reopened.registerUser(new User(user1.getUserId(), "Someone Else")); // Already stored, should be ignored
+            reopened.registerUser(user2);
+
+            assertFalse(restartedCopy.isAvailable(), "Book on loan in the user file should be added as unavailable.");
+            assertEquals(0, reopened.countBooks(null, null, true), "Bitmap index should agree on availability.");
+            assertFalse(reopened.issueBook(user2.getUserId(), book1.getIsbn()), "The same copy must not be lent twice.");
+
+            Optional<User> reloaded = reopened.findUserById(user1.getUserId());
+            assertTrue(reloaded.isPresent());
+            assertEquals("Alice Smith", reloaded.get().getName());
+            assertEquals(List.of(restartedCopy), reloaded.get().getBorrowedBooks(), "Stored borrow should be restored.");
+            assertEquals(1, reopened.getUserCacheStats().getMissCount());
+
+            assertTrue(reopened.returnBook(user1.getUserId(), book1.getIsbn()));
+            assertTrue(reopened.issueBook(user2.getUserId(), book1.getIsbn()), "Returned copy can be lent again.");
+        }
+
+        try (Library reopenedAgain = new Library(userFile, 10)) {
+            Book thirdCopy = new Book(book1.getIsbn(), book1.getTitle(), book1.getAuthor());
+            reopenedAgain.addBook(thirdCopy);
+            assertFalse(thirdCopy.isAvailable(), "Book now on loan to user2 should still be unavailable.");
+            assertTrue(reopenedAgain.canUserBorrow(user1.getUserId()));
+            assertEquals(List.of(thirdCopy), reopenedAgain.findUserById(user2.getUserId()).get().getBorrowedBooks());
+        }
+    }
+
+    @Test
+    @DisplayName("Test disk-backed borrows are stored once the library is flushed and closed")
+    void diskBackedUsers_issuedBook_shouldBeStoredWithoutClosing(@TempDir Path tempDir) throws IOException {
+        Path userFile = tempDir.resolve("users.dat");
+        try (Library diskLibrary = new Library(userFile, 10)) {
+            diskLibrary.addBook(book1);
+            diskLibrary.registerUser(user1);
+            assertTrue(diskLibrary.issueBook(user1.getUserId(), book1.getIsbn()));
+            diskLibrary.flush();
+        }
+
+        try (Library reader = new Library(userFile, 10)) {
+            reader.addBook(book1);
+            Optional<User> stored = reader.findUserById(user1.getUserId());
+            assertTrue(stored.isPresent());
+            assertEquals(List.of(book1), stored.get().getBorrowedBooks(), "Borrow should have been stored.");
+        }
+    }
+
+    @Test
+    @DisplayName("Test a user file cannot be opened by a second library while the first has it open")
+    void diskBackedUsers_fileAlreadyOpen_shouldBeRejected(@TempDir Path tempDir) throws IOException {
+        Path userFile = tempDir.resolve("users.dat");
+        try (Library diskLibrary = new Library(userFile, 10)) {
+            diskLibrary.addBook(book1);
+            diskLibrary.registerUser(user1);
+            assertThrows(IOException.class, () -> new Library(userFile, 10), "Second library must not share the file.");
+            assertTrue(diskLibrary.issueBook(user1.getUserId(), book1.getIsbn()), "First library should keep working.");
+        }
+
+        try (Library reopened = new Library(userFile, 10)) { // Lock is released on close
+            reopened.addBook(book1);
+            assertEquals(1, reopened.findUserById(user1.getUserId()).get().getBorrowedBooks().size());
+        }
+    }
+
+    @Test
+    @DisplayName("Test loading a disk-backed user whose borrowed book is missing fails without losing the borrow")
+    void diskBackedUsers_borrowedBookNotInCatalog_shouldFailAndKeepRecord(@TempDir Path tempDir) throws IOException {
+        Path userFile = tempDir.resolve("users.dat");
+        try (Library diskLibrary = new Library(userFile, 10)) {
+            diskLibrary.addBook(book1);
+            diskLibrary.registerUser(user1);
+            assertTrue(diskLibrary.issueBook(user1.getUserId(), book1.getIsbn()));
+        }
+
+        try (Library reopened = new Library(userFile, 10)) {
+            assertThrows(IllegalStateException.class, () -> reopened.findUserById(user1.getUserId()));
+            assertThrows(IllegalStateException.class, () -> reopened.canUserBorrow(user1.getUserId()),
+                    "A failed load should not leave a partial user in memory.");
+            reopened.addBook(new Book(book1.getIsbn(), book1.getTitle(), book1.getAuthor()));
+
+            Optional<User> reloaded = reopened.findUserById(user1.getUserId());
+            assertTrue(reloaded.isPresent());
+            assertEquals(1, reloaded.get().getBorrowedBooks().size(), "Borrow should still be stored.");
+        }
+    }
+
+    @Test
+    @DisplayName("Test many disk-backed users can each be found through the compact index")
+    void diskBackedUsers_manyUsers_shouldAllBeFound(@TempDir Path tempDir) throws IOException {
+        Path userFile = tempDir.resolve("users.dat");
+        int userCount = 3000; // Enough to grow the index several times
+        try (Library diskLibrary = new Library(userFile, 8)) {
+            for (int i = 0; i < userCount; i++) {
+                diskLibrary.registerUser(new User("user-" + i, "Patron " + i));
+            }
+            diskLibrary.registerUser(new User("user-42", "Duplicate")); // Already stored, should be ignored
+        }
+
+        try (Library reopened = new Library(userFile, 8)) {
+            for (int i = 0; i < userCount; i++) {
+                Optional<User> found = reopened.findUserById("user-" + i);
+                assertTrue(found.isPresent(), "user-" + i + " should be found.");
+                assertEquals("Patron " + i, found.get().getName());
+            }
+            assertFalse(reopened.findUserById("user-" + userCount).isPresent());
+            assertEquals(userCount, reopened.getAllUsers().size());
+        }
+    }
+
+    @Test
+    @DisplayName("Test the disk-backed user file drops stale records once enough of it is stale")
+    void diskBackedUsers_repeatedChanges_shouldKeepFileCompact(@TempDir Path tempDir) throws IOException {
+        Path userFile = tempDir.resolve("users.dat");
+        long liveSize;
+        long sizeWithFewStaleRecords;
+        try (Library diskLibrary = new Library(userFile, 10)) {
+            diskLibrary.addBook(book1);
+            diskLibrary.registerUser(user1);
+            diskLibrary.registerUser(user2);
+            liveSize = Files.size(userFile);
+            assertTrue(diskLibrary.issueBook(user1.getUserId(), book1.getIsbn()));
+            assertTrue(diskLibrary.returnBook(user1.getUserId(), book1.getIsbn()));
+            sizeWithFewStaleRecords = Files.size(userFile);
+        }
+        assertEquals(sizeWithFewStaleRecords, Files.size(userFile), "A few stale records should not be compacted on close.");
+
+        try (Library diskLibrary = new Library(userFile, 10)) {
+            diskLibrary.addBook(book1);
+            for (int i = 0; i < 20000; i++) { // Writes well over the compaction threshold of stale records
+                assertTrue(diskLibrary.issueBook(user1.getUserId(), book1.getIsbn()));
+                assertTrue(diskLibrary.returnBook(user1.getUserId(), book1.getIsbn()));
+            }
+            assertTrue(Files.size(userFile) <= liveSize + DiskBackedUserStore.COMPACTION_MIN_STALE_BYTES,
+                    "Stale records should be compacted away while the library is open.");
+            assertThrows(IOException.class, () -> new Library(userFile, 10), "Compacted file should still be locked.");
+            assertTrue(diskLibrary.issueBook(user2.getUserId(), book1.getIsbn()), "Store should still work after compacting.");
+        }
+
+        try (Library reopened = new Library(userFile, 10)) {
+            Book restartedCopy = new Book(book1.getIsbn(), book1.getTitle(), book1.getAuthor());
+            reopened.addBook(restartedCopy);
+            assertEquals(2, reopened.getAllUsers().size());
+            assertFalse(restartedCopy.isAvailable(), "Latest borrow should survive compaction.");
+            assertEquals(List.of(restartedCopy), reopened.findUserById(user2.getUserId()).get().getBorrowedBooks());
+            assertTrue(reopened.findUserById(user1.getUserId()).get().getBorrowedBooks().isEmpty());
+        }
+    }
+
+    @Test
+    @DisplayName("Test opening a user file with a corrupt record fails with its location and releases the file")
+    void diskBackedUsers_corruptRecord_shouldFailWithOffsetAndRelease(@TempDir Path tempDir) throws IOException {
+        Path userFile = tempDir.resolve("users.dat");
+        Files.write(userFile, new byte[] {0, 0, 0, 3, 0, 5, 'A'}); // Complete record whose name runs past its end
+
+        IOException error = assertThrows(IOException.class, () -> new Library(userFile, 10));
+        assertTrue(error.getMessage().contains("offset 0"), "Message should name the record offset.");
+        assertTrue(error.getMessage().contains(userFile.toString()), "Message should name the file.");
+
+        Files.write(userFile, new byte[0]);
+        try (Library repaired = new Library(userFile, 10)) { // Would fail if the first attempt kept the file locked
+            assertTrue(repaired.getAllUsers().isEmpty());
+        }
+    }
+
+    @Test
+    @DisplayName("Test disk-backed library rejects a non-positive hot set capacity")
+    void diskBackedUsers_invalidCapacity_shouldThrow(@TempDir Path tempDir) {
+        assertThrows(IllegalArgumentException.class, () -> new Library(tempDir.resolve("users.dat"), 0));
+    }
+}